@@ -12,7 +12,8 @@ import jakarta.inject.Inject;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Keeps {@link UserDefinedGlobalVariable}s in {@link ExtensionList} up-to-date
@@ -29,6 +30,11 @@ public class UserDefinedGlobalVariableList extends GlobalVariableSet {
     
     private volatile CopyOnWriteList<GlobalVariable> ours;
 
+    /**
+     * Current {@link UserDefinedGlobalVariable}s sorted by name, so that the list order is stable and {@link #update(Collection)} can touch only some of them.
+     */
+    private final Map<String, UserDefinedGlobalVariable> vars = new TreeMap<String, UserDefinedGlobalVariable>();
+
     /**
      * Rebuilds the list of {@link UserDefinedGlobalVariable}s and update {@link ExtensionList} accordingly.
      */
@@ -36,21 +42,47 @@ public class UserDefinedGlobalVariableList extends GlobalVariableSet {
         File[] children = repo.workspace.resolve(PREFIX).toFile().listFiles();
         if (children==null) children = new File[0];
 
-        List<GlobalVariable> list = new ArrayList<GlobalVariable>();
+        vars.clear();
 
         for (File child : children) {
             if (!child.getName().endsWith(".groovy") || child.isDirectory())
                 continue;
 
             String name = FilenameUtils.getBaseName(child.getName());
-            UserDefinedGlobalVariable uv = new UserDefinedGlobalVariable(name, repo.workspace.resolve(PREFIX).resolve(name + ".txt").toFile());
-            list.add(uv);
+            vars.put(name, newVariable(name));
         }
 
         // first time, build the initial list
         if (ours==null)
             ours = new CopyOnWriteList<GlobalVariable>();
-        ours.replaceBy(list);
+        ours.replaceBy(new ArrayList<GlobalVariable>(vars.values()));
+    }
+
+    /**
+     * Updates only the named {@link UserDefinedGlobalVariable}s, adding, replacing or removing each one
+     * according to whether its script currently exists, and leaves the rest of the list untouched.
+     *
+     * @param names base names of scripts under {@code vars} that may have changed
+     */
+    public synchronized void update(Collection<String> names) {
+        if (ours==null) {
+            rebuild();
+            return;
+        }
+
+        for (String name : names) {
+            if (repo.workspace.resolve(PREFIX).resolve(name + ".groovy").toFile().isFile()) {
+                vars.put(name, newVariable(name));
+            } else {
+                vars.remove(name);
+            }
+        }
+
+        ours.replaceBy(new ArrayList<GlobalVariable>(vars.values()));
+    }
+
+    private UserDefinedGlobalVariable newVariable(String name) {
+        return new UserDefinedGlobalVariable(name, repo.workspace.resolve(PREFIX).resolve(name + ".txt").toFile());
     }
 
     @Override public Collection<GlobalVariable> forRun(Run<?, ?> run) {
@@ -4,6 +4,8 @@ import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.model.RootAction;
 import jenkins.model.Jenkins;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.PostReceiveHook;
 import org.eclipse.jgit.transport.ReceiveCommand;
@@ -14,6 +16,8 @@ import jakarta.inject.Inject;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Exposes the workflow libs as a git repository over HTTP.
@@ -22,9 +26,23 @@ import java.util.Collection;
  */
 @Extension
 public class WorkflowLibRepository extends FileBackedHttpGitRepository implements RootAction {
+    private static final Logger LOGGER = Logger.getLogger(WorkflowLibRepository.class.getName());
+
     @Inject
     UserDefinedGlobalVariableList globalVariableList;
 
+    /**
+     * Held while the working tree is checked out and {@link WorkflowLibRepositoryListener}s are notified,
+     * so that {@link WorkflowLibWatcher} never sees a checkout whose listeners have not run yet.
+     */
+    /*package*/ final Object listenerLock = new Object();
+
+    /**
+     * The commit {@link WorkflowLibRepositoryListener}s were last notified for by a push,
+     * or null if they have since been notified of out-of-band changes. Guarded by {@link #listenerLock}.
+     */
+    /*package*/ ObjectId notifiedHead;
+
     public WorkflowLibRepository() {
         super(workspace());
     }
@@ -80,9 +98,17 @@ public class WorkflowLibRepository extends FileBackedHttpGitRepository implement
         rp.setPostReceiveHook(new PostReceiveHook() {
             @Override
             public void onPostReceive(ReceivePack rp, Collection<ReceiveCommand> commands) {
-                base.onPostReceive(rp,commands);
-                for (WorkflowLibRepositoryListener hookListener: ExtensionList.lookup(WorkflowLibRepositoryListener.class)) {
-                    hookListener.repositoryUpdated();
+                synchronized (listenerLock) {
+                    notifiedHead = null;
+                    base.onPostReceive(rp,commands);
+                    for (WorkflowLibRepositoryListener hookListener: ExtensionList.lookup(WorkflowLibRepositoryListener.class)) {
+                        hookListener.repositoryUpdated();
+                    }
+                    try {
+                        notifiedHead = rp.getRepository().resolve(Constants.HEAD);
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Failed to resolve HEAD of " + workspace, e);
+                    }
                 }
             }
         });
@@ -0,0 +1,324 @@
+package org.jenkinsci.plugins.workflow.cps.global;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.util.SystemProperties;
+import org.apache.commons.io.FilenameUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches {@link WorkflowLibRepository#workspace()} for changes made directly on disk rather than pushed.
+ *
+ * Changed {@code vars/*.groovy} and {@code vars/*.txt} files are applied incrementally through
+ * {@link UserDefinedGlobalVariableList#update(java.util.Collection)}.
+ * Changes under {@code src} notify the other {@link WorkflowLibRepositoryListener}s once per batch,
+ * as {@link ACL#SYSTEM2} since there is no pushing user;
+ * because that API has no incremental hook, their caches get a full refresh.
+ * They are not notified again for a checkout done by a push, which the post-receive hook has already notified them of.
+ *
+ * The workspace is only watched if it exists when Jenkins starts.
+ *
+ * Disabled unless {@code -Dorg.jenkinsci.plugins.workflow.cps.global.WorkflowLibWatcher.ENABLED=true} is set.
+ */
+@Extension
+@Restricted(NoExternalUse.class)
+public class WorkflowLibWatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(WorkflowLibWatcher.class.getName());
+
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static boolean ENABLED = SystemProperties.getBoolean(WorkflowLibWatcher.class.getName() + ".ENABLED");
+
+    /**
+     * How long the workspace must stay quiet before a batch of events is applied.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static long DEBOUNCE_MILLIS = SystemProperties.getLong(WorkflowLibWatcher.class.getName() + ".DEBOUNCE_MILLIS", 500L);
+
+    /**
+     * How long a batch may keep growing while the workspace never goes quiet before it is applied anyway.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "for script console")
+    public static long MAX_BATCH_MILLIS = SystemProperties.getLong(WorkflowLibWatcher.class.getName() + ".MAX_BATCH_MILLIS", 5000L);
+
+    private static final String SRC = "src";
+
+    @Inject
+    WorkflowLibRepository repo;
+
+    @Inject
+    UserDefinedGlobalVariableList globalVariableList;
+
+    private WatchService watchService;
+
+    /**
+     * Directories being watched, by their {@link WatchKey}.
+     */
+    private final Map<WatchKey, Path> dirs = new HashMap<WatchKey, Path>();
+
+    private Thread thread;
+
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static void init() {
+        if (ENABLED) {
+            WorkflowLibWatcher watcher = ExtensionList.lookupSingleton(WorkflowLibWatcher.class);
+            try {
+                watcher.start();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to watch " + watcher.repo.workspace + "; out-of-band changes will not be picked up", e);
+            }
+        }
+    }
+
+    @Terminator
+    public static void shutdown() throws IOException, InterruptedException {
+        ExtensionList.lookupSingleton(WorkflowLibWatcher.class).stop();
+    }
+
+    /**
+     * Starts watching the workspace, if not already doing so.
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null)
+            return;
+        Path root = repo.workspace;
+        if (!Files.isDirectory(root)) {
+            LOGGER.log(Level.INFO, "Not watching {0} since it does not exist yet", root);
+            return;
+        }
+        watchService = root.getFileSystem().newWatchService();
+        try {
+            register(root);
+            register(root.resolve(UserDefinedGlobalVariableList.PREFIX));
+            registerAll(root.resolve(SRC));
+        } catch (IOException e) {
+            watchService.close();
+            watchService = null;
+            dirs.clear();
+            throw e;
+        }
+
+        thread = new Thread(this::run, "Workflow library watcher for " + root);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching the workspace, and waits for a batch being applied to finish.
+     */
+    public void stop() throws IOException, InterruptedException {
+        Thread t;
+        synchronized (this) {
+            if (watchService == null)
+                return;
+            watchService.close();
+            watchService = null;
+            dirs.clear();
+            t = thread;
+            thread = null;
+        }
+        // not holding the lock, which the thread needs to get to the closed WatchService and exit
+        t.join();
+    }
+
+    private void register(Path dir) throws IOException {
+        if (watchService != null && Files.isDirectory(dir)) {
+            dirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+        }
+    }
+
+    private void registerAll(Path dir) throws IOException {
+        if (!Files.isDirectory(dir))
+            return;
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                register(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void run() {
+        WatchService ws;
+        synchronized (this) {
+            ws = watchService;
+        }
+        try {
+            while (true) {
+                try {
+                    Batch batch = take(ws);
+                    if (!batch.isEmpty()) {
+                        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                            apply(batch);
+                        }
+                    }
+                } catch (ClosedWatchServiceException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to apply changes to " + repo.workspace, e);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            LOGGER.log(Level.FINE, "Stopped watching " + repo.workspace, e);
+        }
+    }
+
+    /**
+     * Blocks for the first event, then keeps collecting until things settle down or the batch gets too old.
+     */
+    private Batch take(WatchService ws) throws InterruptedException {
+        Batch batch = new Batch();
+        WatchKey key = ws.take();
+        long deadline = System.currentTimeMillis() + MAX_BATCH_MILLIS;
+        while (key != null) {
+            collect(key, batch);
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                break;
+            key = ws.poll(Math.min(DEBOUNCE_MILLIS, remaining), TimeUnit.MILLISECONDS);
+        }
+        return batch;
+    }
+
+    private synchronized void collect(WatchKey key, Batch batch) {
+        Path dir = dirs.get(key);
+        Path root = repo.workspace;
+        try {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || dir == null) {
+                    batch.overflow = true;
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                Path rel = root.relativize(child);
+                String top = rel.getName(0).toString();
+
+                if (top.equals(UserDefinedGlobalVariableList.PREFIX)) {
+                    if (rel.getNameCount() == 1) {
+                        // vars/ itself came or went
+                        batch.overflow = true;
+                            tryRegister(child, false);
+                    } else if (rel.getNameCount() == 2) {
+                        String name = child.getFileName().toString();
+                        String ext = FilenameUtils.getExtension(name);
+                        if (ext.equals("groovy") || ext.equals("txt")) {
+                            batch.vars.add(FilenameUtils.getBaseName(name));
+                                }
+                    }
+                } else if (top.equals(SRC)) {
+                    batch.src = true;
+                    if (event.kind() == ENTRY_CREATE) {
+                        tryRegister(child, true);
+                    }
+                }
+            }
+        } finally {
+            if (!key.reset()) {
+                dirs.remove(key);
+            }
+        }
+    }
+
+    private void tryRegister(Path dir, boolean recursive) {
+        try {
+            if (recursive) {
+                registerAll(dir);
+            } else {
+                register(dir);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to watch " + dir, e);
+        }
+    }
+
+    private void apply(Batch batch) {
+        LOGGER.log(Level.FINE, "Applying changes to {0}: vars={1} src={2} overflow={3}",
+                new Object[] {repo.workspace, batch.vars, batch.src, batch.overflow});
+        if (batch.overflow) {
+            globalVariableList.rebuild();
+        } else if (!batch.vars.isEmpty()) {
+            globalVariableList.update(batch.vars);
+        }
+        if (batch.overflow || batch.src) {
+            synchronized (repo.listenerLock) {
+                if (!batch.overflow && isCheckedOutAndNotified()) {
+                    LOGGER.log(Level.FINE, "{0}/{1} matches the last push, not notifying listeners again", new Object[] {repo.workspace, SRC});
+                    return;
+                }
+                repo.notifiedHead = null;
+                for (WorkflowLibRepositoryListener l : ExtensionList.lookup(WorkflowLibRepositoryListener.class)) {
+                    // the variable list was already updated above
+                    if (l instanceof UserDefinedGlobalVariableRepoListener)
+                        continue;
+                    try {
+                        l.repositoryUpdated();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to notify " + l, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether listeners were last notified by a push of the current HEAD, and {@code src} is unchanged since,
+     * meaning the batch only holds the checkout of that push.
+     * Must be called while holding {@link WorkflowLibRepository#listenerLock}.
+     */
+    private boolean isCheckedOutAndNotified() {
+        if (repo.notifiedHead == null)
+            return false;
+        try (Git git = Git.open(repo.workspace.toFile())) {
+            return repo.notifiedHead.equals(git.getRepository().resolve(Constants.HEAD))
+                    && git.status().addPath(SRC).call().isClean();
+        } catch (IOException | GitAPIException e) {
+            LOGGER.log(Level.WARNING, "Failed to check the status of " + repo.workspace, e);
+            return false;
+        }
+    }
+
+    /**
+     * Changes to {@code vars} and {@code src} accumulated between two quiet periods.
+     */
+    private static final class Batch {
+        final Set<String> vars = new TreeSet<String>();
+        boolean src;
+        boolean overflow;
+
+        boolean isEmpty() {
+            return vars.isEmpty() && !src && !overflow;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package org.jenkinsci.plugins.workflow.cps.global;
+
+import hudson.FilePath;
+import hudson.Functions;
+import org.eclipse.jgit.api.CloneCommand;
+import org.eclipse.jgit.api.Git;
+import org.jenkinsci.plugins.workflow.cps.GlobalVariable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import jakarta.inject.Inject;
+import java.io.File;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.jenkinsci.plugins.workflow.cps.global.UserDefinedGlobalVariableList.PREFIX;
+import static org.junit.Assume.assumeFalse;
+
+public class WorkflowLibWatcherTest extends Assert {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Inject
+    WorkflowLibRepository repo;
+
+    @Inject
+    UserDefinedGlobalVariableList uvl;
+
+    @Inject
+    WorkflowLibWatcher watcher;
+
+    private FilePath vars;
+    private FilePath src;
+
+    @Before
+    public void setUp() throws Exception {
+        j.jenkins.getInjector().injectMembers(this);
+        CountingListener.count.set(0);
+        vars = new FilePath(repo.workspace.resolve(PREFIX).toFile());
+        vars.mkdirs();
+        src = new FilePath(repo.workspace.resolve("src").toFile());
+        src.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.stop();
+    }
+
+    /**
+     * Starts from whatever the test has put into the workspace so far.
+     */
+    private void watch() throws Exception {
+        uvl.rebuild();
+        watcher.start();
+    }
+
+    /**
+     * Files written straight into the workspace should appear/disappear without a push.
+     */
+    @Test
+    public void outOfBandChanges() throws Exception {
+        watch();
+        vars.child("acme.groovy").write("// empty", "UTF-8");
+        awaitVariable("acme", true);
+
+        vars.child("acme.groovy").delete();
+        awaitVariable("acme", false);
+    }
+
+    /**
+     * Only the changed variables are replaced; the others keep their instances.
+     */
+    @Test
+    public void otherVariablesKept() throws Exception {
+        vars.child("a.groovy").write("// a", "UTF-8");
+        vars.child("b.groovy").write("// b", "UTF-8");
+        watch();
+        GlobalVariable a = GlobalVariable.byName("a", null);
+        GlobalVariable b = GlobalVariable.byName("b", null);
+
+        vars.child("b.groovy").write("// b changed", "UTF-8");
+        await(() -> GlobalVariable.byName("b", null) != b);
+        vars.child("c.groovy").write("// c", "UTF-8");
+        awaitVariable("c", true);
+
+        assertSame(a, GlobalVariable.byName("a", null));
+        assertEquals(0, CountingListener.count.get());
+    }
+
+    /**
+     * Editing only the help text is enough to update the variable.
+     */
+    @Test
+    public void helpOnlyChange() throws Exception {
+        vars.child("acme.groovy").write("// empty", "UTF-8");
+        vars.child("acme.txt").write("one", "UTF-8");
+        watch();
+        GlobalVariable acme = GlobalVariable.byName("acme", null);
+
+        vars.child("acme.txt").write("two", "UTF-8");
+        await(() -> GlobalVariable.byName("acme", null) != acme);
+
+        assertEquals("two", ((UserDefinedGlobalVariable) GlobalVariable.byName("acme", null)).getHelpHtml());
+    }
+
+    /**
+     * Changes under {@code src} notify other listeners, once for writes in quick succession.
+     */
+    @Test
+    public void srcChangeNotifiesOnce() throws Exception {
+        watch();
+        src.child("Foo.groovy").write("class Foo {}", "UTF-8");
+        src.child("Bar.groovy").write("class Bar {}", "UTF-8");
+        await(() -> CountingListener.count.get() > 0);
+        assertEquals(1, CountingListener.count.get());
+    }
+
+    /**
+     * New directories under {@code src} are watched too.
+     */
+    @Test
+    public void newSrcSubdirectory() throws Exception {
+        watch();
+        src.child("foo").mkdirs();
+        await(() -> CountingListener.count.get() == 1);
+
+        src.child("foo/Foo.groovy").write("package foo; class Foo {}", "UTF-8");
+        await(() -> CountingListener.count.get() == 2);
+    }
+
+    /**
+     * Deleting and recreating {@code vars} falls back to a full rebuild and keeps watching the new directory.
+     */
+    @Test
+    public void varsRecreated() throws Exception {
+        // Windows does not let a watched directory be deleted cleanly
+        assumeFalse(Functions.isWindows());
+        vars.child("a.groovy").write("// a", "UTF-8");
+        watch();
+
+        vars.deleteRecursive();
+        awaitVariable("a", false);
+
+        vars.mkdirs();
+        vars.child("b.groovy").write("// b", "UTF-8");
+        awaitVariable("b", true);
+
+        vars.child("c.groovy").write("// c", "UTF-8");
+        awaitVariable("c", true);
+    }
+
+    /**
+     * Writes in quick succession all end up in the list.
+     */
+    @Test
+    public void rapidWrites() throws Exception {
+        watch();
+        for (int i = 0; i < 10; i++) {
+            vars.child("v" + i + ".groovy").write("// " + i, "UTF-8");
+        }
+        for (int i = 0; i < 10; i++) {
+            awaitVariable("v" + i, true);
+        }
+    }
+
+    /**
+     * The checkout done by a push is only notified by the post-receive hook,
+     * but later out-of-band edits of what it checked out are picked up.
+     */
+    @Test
+    public void push() throws Exception {
+        watch();
+        Git git = cloneRepository();
+        new FilePath(new File(git.getRepository().getWorkTree(), "src")).child("Foo.groovy").write("class Foo {}", "UTF-8");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("changed").call();
+        git.push().call();
+        assertEquals(1, CountingListener.count.get());
+
+        // events are handled in order, so once this shows up the checkout has been seen too
+        vars.child("marker.groovy").write("// marker", "UTF-8");
+        awaitVariable("marker", true);
+        assertEquals(1, CountingListener.count.get());
+
+        src.child("Foo.groovy").write("class Foo { int x }", "UTF-8");
+        await(() -> CountingListener.count.get() == 2);
+    }
+
+    private Git cloneRepository() throws Exception {
+        CloneCommand clone = Git.cloneRepository();
+        clone.setURI(new URL(j.getURL(), "workflowLibs.git").toExternalForm());
+        clone.setDirectory(tmp.newFolder());
+        return clone.call();
+    }
+
+    private void awaitVariable(String name, boolean present) throws Exception {
+        await(() -> (GlobalVariable.byName(name, null) != null) == present);
+    }
+
+    private static void await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline)
+                fail("condition never met");
+            Thread.sleep(100);
+        }
+    }
+
+    @TestExtension
+    public static class CountingListener extends WorkflowLibRepositoryListener {
+        static final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void repositoryUpdated() {
+            count.incrementAndGet();
+        }
+    }
+}